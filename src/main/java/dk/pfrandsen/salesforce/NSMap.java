@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Utility to remove/replace prefix in object keys in json tree.
@@ -69,6 +70,84 @@ public final class NSMap {
         return null;
     }
 
+    /**
+     * Remove prefix from all object keys that starts with given prefix without copying unchanged parts of the tree.
+     * See {@link #transformShared(JsonNode, String, String)}.
+     *
+     * @param src source json tree
+     * @param prefix prefix to remove from object keys
+     * @return tree with prefix removed from object keys, sharing unchanged subtrees with source tree
+     */
+    public static JsonNode transformShared(JsonNode src, String prefix) {
+        return transformShared(src, prefix, null);
+    }
+
+    /**
+     * Replace prefix in all object keys that starts with given prefix without copying unchanged parts of the tree.
+     * Subtrees that do not contain a key starting with prefix are returned as is (same instance as in the source
+     * tree), and new container nodes are only created along the paths leading to renamed keys. If no key matches, the
+     * source tree itself is returned. The source tree is never modified, but as the result shares nodes with it,
+     * changes made to one tree after the transform may be visible in the other. Key clashes are handled as in
+     * {@link #transform(JsonNode, String, String)}.
+     *
+     * @param src source json tree
+     * @param prefix prefix to replace in object keys
+     * @param replace string to replace prefix with
+     * @return tree with prefix replaced in object keys, sharing unchanged subtrees with source tree
+     */
+    public static JsonNode transformShared(JsonNode src, String prefix, String replace) {
+        if (src == null || prefix == null || prefix.length() == 0 || prefix.equals(replace)) {
+            return src;
+        }
+        return share(src, prefix, replace);
+    }
+
+    private static JsonNode share(JsonNode src, String prefix, String replace) {
+        if (!src.isContainerNode() || src.size() == 0) {
+            return src;
+        }
+        if (src.isArray()) {
+            ArrayNode arr = null; // only created when first changed element is seen
+            for (int i = 0; i < src.size(); i++) {
+                JsonNode node = src.get(i);
+                JsonNode t = share(node, prefix, replace);
+                if (arr == null && t != node) {
+                    arr = MAPPER.createArrayNode();
+                    for (int j = 0; j < i; j++) {
+                        arr.add(src.get(j));
+                    }
+                }
+                if (arr != null) {
+                    arr.add(t);
+                }
+            }
+            return arr == null ? src : arr;
+        }
+        ObjectNode obj = null; // only created when first changed key or value is seen
+        int index = 0;
+        Iterator<Map.Entry<String, JsonNode>> iter = src.fields();
+        while (iter.hasNext()) {
+            Map.Entry<String, JsonNode> field = iter.next();
+            String nodeName = field.getKey();
+            JsonNode node = field.getValue();
+            String name = map(prefix, replace, nodeName);
+            JsonNode t = share(node, prefix, replace);
+            if (obj == null && (t != node || !name.equals(nodeName))) {
+                obj = MAPPER.createObjectNode();
+                Iterator<Map.Entry<String, JsonNode>> copy = src.fields();
+                for (int j = 0; j < index; j++) {
+                    Map.Entry<String, JsonNode> unchanged = copy.next();
+                    obj.set(unchanged.getKey(), unchanged.getValue());
+                }
+            }
+            if (obj != null) {
+                obj.set(name, t);
+            }
+            index++;
+        }
+        return obj == null ? src : obj;
+    }
+
     /**
      * Remove prefix from string.
      *
@@ -101,4 +180,34 @@ public final class NSMap {
         return value.startsWith(prefix) ? (replace + value.substring(prefix.length())) : value;
     }
 
+    /**
+     * Add or replace namespace prefix in custom field or relationship name (name ending with __c or __r). This is the
+     * outbound counterpart of {@link #map(String, String, String)} used when sending records to Salesforce; standard
+     * field names are never changed. Names that already have a namespace (a __ separator before the suffix, e.g.
+     * Other__Field__c from another managed package) are not changed unless they start with prefix.
+     *
+     * @param prefix existing prefix to be replaced (if null, empty, or not present the namespace is just added)
+     * @param replace namespace prefix to add (if null or empty prefix will be removed and not replaced)
+     * @param value field or relationship name
+     * @return value if value is null, a standard name, already starts with replace, or has another namespace, else
+     * value with prefix replaced or added
+     */
+    public static String outbound(String prefix, String replace, String value) {
+        if (value == null || !(value.endsWith("__c") || value.endsWith("__r"))) {
+            return value;
+        }
+        boolean add = replace != null && replace.length() > 0;
+        if (add && value.startsWith(replace)) {
+            return value;
+        }
+        if (prefix != null && prefix.length() > 0 && value.startsWith(prefix)) {
+            String name = value.substring(prefix.length());
+            return add ? (replace + name) : name;
+        }
+        if (!add || value.lastIndexOf("__", value.length() - 5) >= 0) {
+            return value;
+        }
+        return replace + value;
+    }
+
 }
@@ -0,0 +1,216 @@
+package dk.pfrandsen.salesforce;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Helper class for serializing records (POJOs, maps, or json trees) for insert/update requests. The namespace prefix
+ * is added to (or replaces prefix in) custom field and relationship names as the record is written, see
+ * {@link NSMap#outbound(String, String, String)}. The sObject type in attributes objects ({"attributes": {"type": ...}})
+ * is mapped the same way. Records are serialized in a single pass without building an intermediate json tree, and the
+ * generator is not flushed between records. Instances are immutable and thread-safe.
+ */
+public final class NSRecordWriter {
+    /**
+     * Max number of records in a single sObject Collections request.
+     */
+    public static final int COLLECTION_SIZE = 200;
+
+    private static final int MAX_CACHED_NAMES = 1024;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ObjectMapper mapper; // used when generator codec is not an object mapper
+    private final ObjectWriter writer; // mapper writer without flush after each record
+    private final String prefix; // prefix value to replace
+    private final String replace; // namespace prefix to add
+    private final boolean allOrNone;
+    private final ConcurrentMap<String, SerializableString> names; // mapped names, keyed by source name
+
+    /**
+     * Create writer that adds namespace prefix to custom field and relationship names that does not already have a
+     * namespace.
+     *
+     * @param replace namespace prefix to add
+     */
+    public NSRecordWriter(String replace) {
+        this(null, replace);
+    }
+
+    /**
+     * Create writer that replaces prefix in custom field and relationship names with namespace prefix. Names without
+     * the prefix and without another namespace get the namespace prefix added.
+     *
+     * @param prefix prefix to be replaced (if null or empty the namespace prefix is just added)
+     * @param replace namespace prefix to add (if null or empty prefix will be removed and not replaced)
+     */
+    public NSRecordWriter(String prefix, String replace) {
+        this(prefix, replace, false);
+    }
+
+    /**
+     * Create writer that replaces prefix in custom field and relationship names with namespace prefix.
+     *
+     * @param prefix prefix to be replaced (if null or empty the namespace prefix is just added)
+     * @param replace namespace prefix to add (if null or empty prefix will be removed and not replaced)
+     * @param allOrNone allOrNone flag written in collection request bodies; if true Salesforce rolls back the entire
+     *                  request if any record fails
+     */
+    public NSRecordWriter(String prefix, String replace, boolean allOrNone) {
+        this(MAPPER, prefix, replace, allOrNone);
+    }
+
+    /**
+     * Create writer that replaces prefix in custom field and relationship names with namespace prefix, and serializes
+     * records with given mapper unless the generator written to has an object mapper as codec.
+     *
+     * @param mapper mapper used to create generators for collection request bodies and to serialize records
+     * @param prefix prefix to be replaced (if null or empty the namespace prefix is just added)
+     * @param replace namespace prefix to add (if null or empty prefix will be removed and not replaced)
+     * @param allOrNone allOrNone flag written in collection request bodies; if true Salesforce rolls back the entire
+     *                  request if any record fails
+     */
+    public NSRecordWriter(ObjectMapper mapper, String prefix, String replace, boolean allOrNone) {
+        this.mapper = mapper;
+        this.writer = writer(mapper);
+        this.prefix = prefix;
+        this.replace = replace;
+        this.allOrNone = allOrNone;
+        this.names = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Write record to generator with namespace added to custom field and relationship names. The record is serialized
+     * with the generator codec if it is an object mapper (so its configuration and modules are used). The generator
+     * is not flushed.
+     *
+     * @param gen generator to write to
+     * @param record record to write
+     * @throws IOException if record could not be written
+     */
+    public void write(JsonGenerator gen, Object record) throws IOException {
+        ObjectCodec codec = gen.getCodec();
+        ObjectWriter w = (codec instanceof ObjectMapper && codec != mapper) ? writer((ObjectMapper) codec) : writer;
+        w.writeValue(new OutboundGenerator(gen), record);
+    }
+
+    /**
+     * Write records as a single sObject Collections request body ({"allOrNone": ..., "records": [...]}). Note that
+     * the Collections API requires each record to have an attributes object with the sObject type; the type is
+     * mapped like custom field names, so records may use the type name without namespace.
+     *
+     * @param gen generator to write to
+     * @param records records to write (at most {@link #COLLECTION_SIZE})
+     * @throws IOException if records could not be written
+     */
+    public void writeCollection(JsonGenerator gen, List<?> records) throws IOException {
+        if (records.size() > COLLECTION_SIZE) {
+            throw new IllegalArgumentException("Collection size " + records.size() + " exceeds max size "
+                    + COLLECTION_SIZE);
+        }
+        gen.writeStartObject();
+        gen.writeBooleanField("allOrNone", allOrNone);
+        gen.writeArrayFieldStart("records");
+        for (Object record : records) {
+            write(gen, record);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Split records into batches of {@link #COLLECTION_SIZE} and write each batch as a request body.
+     *
+     * @param records records to write
+     * @return request bodies, one per batch (empty if there are no records)
+     * @throws IOException if records could not be written
+     */
+    public List<String> writeCollections(List<?> records) throws IOException {
+        List<String> bodies = new ArrayList<>();
+        for (int from = 0; from < records.size(); from += COLLECTION_SIZE) {
+            List<?> batch = records.subList(from, Math.min(from + COLLECTION_SIZE, records.size()));
+            StringWriter out = new StringWriter();
+            try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+                writeCollection(gen, batch);
+            }
+            bodies.add(out.toString());
+        }
+        return bodies;
+    }
+
+    private static ObjectWriter writer(ObjectMapper mapper) {
+        return mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    private SerializableString map(String name) {
+        SerializableString mapped = names.get(name);
+        if (mapped == null) {
+            mapped = new SerializedString(NSMap.outbound(prefix, replace, name));
+            if (names.size() < MAX_CACHED_NAMES) { // bound cache as map keys and type values are not known up front
+                names.putIfAbsent(name, mapped);
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Generator that maps object keys, and sObject type in attributes objects, as they are written.
+     */
+    private final class OutboundGenerator extends JsonGeneratorDelegate {
+        OutboundGenerator(JsonGenerator gen) {
+            super(gen, false);
+        }
+
+        @Override
+        public void writeFieldName(String name) throws IOException {
+            delegate.writeFieldName(map(name));
+        }
+
+        @Override
+        public void writeFieldName(SerializableString name) throws IOException {
+            delegate.writeFieldName(map(name.getValue()));
+        }
+
+        @Override
+        public void writeString(String text) throws IOException {
+            if (text != null && isType()) {
+                delegate.writeString(map(text));
+            } else {
+                delegate.writeString(text);
+            }
+        }
+
+        @Override
+        public void writeString(SerializableString text) throws IOException {
+            if (isType()) {
+                delegate.writeString(map(text.getValue()));
+            } else {
+                delegate.writeString(text);
+            }
+        }
+
+        // true if next value is the type field in an attributes object (attributes is a reserved key)
+        private boolean isType() {
+            JsonStreamContext ctx = delegate.getOutputContext();
+            if (!ctx.inObject() || !"type".equals(ctx.getCurrentName())) {
+                return false;
+            }
+            JsonStreamContext record = ctx.getParent(); // current name in record is the attributes key
+            return record != null && record.inObject() && "attributes".equals(record.getCurrentName());
+        }
+    }
+
+}
@@ -116,4 +116,66 @@ public class NSMapTest {
         JsonNode transformed = NSMap.transform(NSMap.transform(rootNode, "Pre_", "Other_"), "Other_", "Pre_");
     }
 
+    @Test
+    public void testSharedNoMatchReturnsSource() throws IOException {
+        String json = loadData("array1");
+        JsonNode rootNode = MAPPER.readTree(json);
+        assertNotNull(rootNode);
+        assertSame(rootNode, NSMap.transformShared(rootNode, "None_"));
+        assertSame(rootNode, NSMap.transformShared(rootNode, null));
+        assertSame(rootNode, NSMap.transformShared(rootNode, "Pre_", "Pre_"));
+    }
+
+    @Test
+    public void testSharedRemovePrefix() throws IOException {
+        String json = loadData("array1");
+        JsonNode rootNode = MAPPER.readTree(json);
+        assertNotNull(rootNode);
+        JsonNode transformed = NSMap.transformShared(rootNode, "Pre_");
+        assertNotSame(rootNode, transformed);
+        assertEquals(NSMap.transform(rootNode, "Pre_"), transformed);
+        // source is left intact
+        JsonNode src = rootNode.path("records").get(0);
+        assertFalse(src.path("Pre_Subject__c").isMissingNode());
+        assertTrue(src.path("Subject__c").isMissingNode());
+        // subtrees without matching keys are shared
+        JsonNode obj = transformed.path("records").get(0);
+        assertNotSame(src, obj);
+        assertSame(src.path("attributes"), obj.path("attributes"));
+        assertSame(src.path("Pre_Subject__c"), obj.path("Subject__c"));
+        assertNotSame(src.path("Account__r"), obj.path("Account__r"));
+        assertSame(src.path("Account__r").path("attributes"), obj.path("Account__r").path("attributes"));
+        assertFalse(obj.path("Parent_Message__r").path("Id__c").isMissingNode());
+    }
+
+    @Test
+    public void testSharedReplacePrefix() throws IOException {
+        String json = "[{\"a\":{\"b\":1}},{\"c\":[{\"p_k\":\"p_v\"}]},\"s\"]";
+        JsonNode rootNode = MAPPER.readTree(json);
+        JsonNode transformed = NSMap.transformShared(rootNode, "p_", "r_");
+        assertEquals(NSMap.transform(rootNode, "p_", "r_"), transformed);
+        assertSame(rootNode.get(0), transformed.get(0));
+        assertNotSame(rootNode.get(1), transformed.get(1));
+        assertSame(rootNode.get(2), transformed.get(2));
+        assertEquals("p_v", transformed.get(1).path("c").get(0).path("r_k").asText());
+        assertEquals("p_v", rootNode.get(1).path("c").get(0).path("p_k").asText());
+    }
+
+    @Test
+    public void testOutbound() {
+        assertEquals("Pre_Subject__c", NSMap.outbound(null, "Pre_", "Subject__c"));
+        assertEquals("Pre_Parent__r", NSMap.outbound("", "Pre_", "Parent__r"));
+        assertEquals("Pre_Subject__c", NSMap.outbound(null, "Pre_", "Pre_Subject__c"));
+        assertEquals("Pre_Subject__c", NSMap.outbound("Other_", "Pre_", "Other_Subject__c"));
+        assertEquals("Subject__c", NSMap.outbound("Other_", null, "Other_Subject__c"));
+        assertEquals("Name", NSMap.outbound(null, "Pre_", "Name"));
+        assertEquals("attributes", NSMap.outbound("Other_", "Pre_", "attributes"));
+        assertNull(NSMap.outbound(null, "Pre_", null));
+        // names with another namespace are not changed unless they start with prefix
+        assertEquals("Other__Field__c", NSMap.outbound(null, "ns__", "Other__Field__c"));
+        assertEquals("Other__Parent__r", NSMap.outbound("Pre_", "ns__", "Other__Parent__r"));
+        assertEquals("ns__Field__c", NSMap.outbound("Other__", "ns__", "Other__Field__c"));
+        assertEquals("ns__Field__c", NSMap.outbound(null, "ns__", "Field__c"));
+    }
+
 }
@@ -0,0 +1,164 @@
+package dk.pfrandsen.salesforce;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class NSRecordWriterTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static class Message {
+        public String Id = "a0P";
+        public String Subject__c = "sub";
+        public Map<String, Object> Parent_Message__r = Collections.singletonMap("Id__c", "abc");
+    }
+
+    private JsonNode write(NSRecordWriter writer, Object record) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = MAPPER.getFactory().createGenerator(out)) {
+            writer.write(gen, record);
+        }
+        return MAPPER.readTree(out.toString());
+    }
+
+    @Test
+    public void testWritePojo() throws IOException {
+        JsonNode node = write(new NSRecordWriter("Pre_"), new Message());
+        assertEquals("a0P", node.path("Id").asText());
+        assertEquals("sub", node.path("Pre_Subject__c").asText());
+        assertTrue(node.path("Subject__c").isMissingNode());
+        assertEquals("abc", node.path("Pre_Parent_Message__r").path("Pre_Id__c").asText());
+    }
+
+    @Test
+    public void testWriteTree() throws IOException {
+        ObjectNode record = MAPPER.createObjectNode();
+        record.putObject("attributes").put("type", "Message__c");
+        record.put("Id", "a0P");
+        record.put("Subject__c", "sub");
+        ObjectNode parent = record.putObject("Parent_Message__r");
+        parent.put("Id__c", "abc");
+        parent.putObject("Account__r").put("Name", "n").put("Public_Id__c", "123");
+        JsonNode node = write(new NSRecordWriter("Pre_"), record);
+        assertEquals("Pre_Message__c", node.path("attributes").path("type").asText());
+        assertEquals("a0P", node.path("Id").asText());
+        assertEquals("sub", node.path("Pre_Subject__c").asText());
+        JsonNode pMsg = node.path("Pre_Parent_Message__r");
+        assertEquals("abc", pMsg.path("Pre_Id__c").asText());
+        assertEquals("n", pMsg.path("Pre_Account__r").path("Name").asText());
+        assertEquals("123", pMsg.path("Pre_Account__r").path("Pre_Public_Id__c").asText());
+        assertTrue(node.path("Parent_Message__r").isMissingNode());
+    }
+
+    @Test
+    public void testWriteAttributesType() throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("attributes", Collections.singletonMap("type", "Message__c"));
+        record.put("type", "Message__c");
+        Map<String, Object> parent = new LinkedHashMap<>();
+        parent.put("attributes", Collections.singletonMap("type", "Message__c"));
+        parent.put("Id__c", "abc");
+        record.put("Parent_Message__r", parent);
+        JsonNode node = write(new NSRecordWriter("Pre_"), record);
+        assertEquals("Pre_Message__c", node.path("attributes").path("type").asText());
+        // type in attributes of related records is mapped, other type values are not
+        assertEquals("Message__c", node.path("type").asText());
+        JsonNode pMsg = node.path("Pre_Parent_Message__r");
+        assertEquals("Pre_Message__c", pMsg.path("attributes").path("type").asText());
+        assertEquals("abc", pMsg.path("Pre_Id__c").asText());
+
+        List<String> bodies = new NSRecordWriter("Pre_").writeCollections(Collections.singletonList(record));
+        JsonNode body = MAPPER.readTree(bodies.get(0));
+        assertEquals("Pre_Message__c", body.path("records").get(0).path("attributes").path("type").asText());
+    }
+
+    @Test
+    public void testWriteMapReplacePrefix() throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("attributes", Collections.singletonMap("type", "Other_Message__c"));
+        record.put("Name", "n");
+        record.put("Other_Subject__c", "sub");
+        JsonNode node = write(new NSRecordWriter("Other_", "Pre_"), record);
+        assertEquals("Pre_Message__c", node.path("attributes").path("type").asText());
+        assertEquals("n", node.path("Name").asText());
+        assertEquals("sub", node.path("Pre_Subject__c").asText());
+        assertTrue(node.path("Other_Subject__c").isMissingNode());
+    }
+
+    @Test
+    public void testWriteCollections() throws IOException {
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < 450; i++) {
+            records.add(Collections.singletonMap("Index__c", i));
+        }
+        List<String> bodies = new NSRecordWriter(null, "Pre_", true).writeCollections(records);
+        assertEquals(3, bodies.size());
+        JsonNode last = MAPPER.readTree(bodies.get(2));
+        assertTrue(last.path("allOrNone").asBoolean());
+        assertEquals(50, last.path("records").size());
+        assertEquals(449, last.path("records").get(49).path("Pre_Index__c").asInt());
+        assertEquals(200, MAPPER.readTree(bodies.get(0)).path("records").size());
+        assertTrue(new NSRecordWriter("Pre_").writeCollections(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testWriteUsesGeneratorCodec() throws IOException {
+        ObjectMapper mapper = new ObjectMapper().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        Map<String, Object> record = Collections.singletonMap("When__c", new Date(0));
+        StringWriter out = new StringWriter();
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+            new NSRecordWriter("Pre_").write(gen, record);
+        }
+        JsonNode node = MAPPER.readTree(out.toString());
+        assertTrue(node.path("Pre_When__c").isTextual());
+        assertTrue(node.path("Pre_When__c").asText().startsWith("1970-01-01"));
+
+        List<String> bodies = new NSRecordWriter(mapper, null, "Pre_", false)
+                .writeCollections(Collections.singletonList(record));
+        JsonNode body = MAPPER.readTree(bodies.get(0));
+        assertTrue(body.path("records").get(0).path("Pre_When__c").asText().startsWith("1970-01-01"));
+    }
+
+    @Test
+    public void testWriteCollectionNoFlush() throws IOException {
+        final int[] flushes = new int[1];
+        StringWriter out = new StringWriter();
+        List<Object> records = Collections.nCopies(NSRecordWriter.COLLECTION_SIZE, new Message());
+        try (JsonGenerator gen = MAPPER.getFactory().createGenerator(out)) {
+            JsonGenerator counting = new JsonGeneratorDelegate(gen, false) {
+                @Override
+                public void flush() throws IOException {
+                    flushes[0]++;
+                    super.flush();
+                }
+            };
+            new NSRecordWriter("Pre_").writeCollection(counting, records);
+            assertEquals(0, flushes[0]);
+        }
+        assertEquals(NSRecordWriter.COLLECTION_SIZE, MAPPER.readTree(out.toString()).path("records").size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteCollectionTooLarge() throws IOException {
+        List<Object> records = Collections.nCopies(NSRecordWriter.COLLECTION_SIZE + 1, new Message());
+        try (JsonGenerator gen = MAPPER.getFactory().createGenerator(new StringWriter())) {
+            new NSRecordWriter("Pre_").writeCollection(gen, records);
+        }
+    }
+
+}